@@ -29,6 +29,10 @@ android {
         sourceCompatibility = JavaVersion.VERSION_1_8
         targetCompatibility = JavaVersion.VERSION_1_8
     }
+    testOptions {
+        // Local tests run code that logs through android.util.Log
+        unitTests.isReturnDefaultValues = true
+    }
 }
 
 dependencies {
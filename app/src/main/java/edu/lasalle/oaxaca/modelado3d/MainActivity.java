@@ -2,18 +2,31 @@ package edu.lasalle.oaxaca.modelado3d;
 
 import android.app.Activity;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.opengl.GLSurfaceView;
 import android.util.Log;
+import android.view.Gravity;
 import android.view.MotionEvent;
 import android.view.ScaleGestureDetector;
 import android.view.GestureDetector;
 import android.view.GestureDetector.SimpleOnGestureListener;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.FrameLayout;
+import android.widget.ProgressBar;
 
 public class MainActivity extends Activity {
     private static final String TAG = "MainActivity";
     private GLSurfaceView glSurfaceView;
     private MyRenderer renderer;
 
+    // Model load progress
+    private static final int PROGRESS_MAX = 1000;
+    private static final long PROGRESS_INTERVAL_MS = 100;
+    private ProgressBar loadProgressBar;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+
     // Gesture detectors
     private ScaleGestureDetector scaleDetector;
     private GestureDetector gestureDetector;
@@ -46,8 +59,17 @@ public class MainActivity extends Activity {
             scaleDetector = new ScaleGestureDetector(this, new ScaleListener());
             gestureDetector = new GestureDetector(this, new GestureListener());
 
+            // Progress bar shown on top of the surface while the model loads
+            loadProgressBar = new ProgressBar(this, null, android.R.attr.progressBarStyleHorizontal);
+            loadProgressBar.setMax(PROGRESS_MAX);
+            FrameLayout.LayoutParams progressParams = new FrameLayout.LayoutParams(
+                    ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT, Gravity.TOP);
+
             // Set the content view to our surface
-            setContentView(glSurfaceView);
+            FrameLayout root = new FrameLayout(this);
+            root.addView(glSurfaceView);
+            root.addView(loadProgressBar, progressParams);
+            setContentView(root);
 
             Log.d(TAG, "Surface setup complete");
         } catch (Exception e) {
@@ -55,6 +77,20 @@ public class MainActivity extends Activity {
         }
     }
 
+    // Polls the renderer until the model has been fully parsed
+    private final Runnable progressUpdater = new Runnable() {
+        @Override
+        public void run() {
+            float progress = renderer.getLoadProgress();
+            loadProgressBar.setProgress((int) (progress * PROGRESS_MAX));
+            if (progress >= 1.0f) {
+                loadProgressBar.setVisibility(View.GONE);
+            } else {
+                handler.postDelayed(this, PROGRESS_INTERVAL_MS);
+            }
+        }
+    };
+
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         // Let the scale detector process the event first
@@ -116,6 +152,11 @@ public class MainActivity extends Activity {
             if (glSurfaceView != null) {
                 glSurfaceView.onResume();
             }
+            if (loadProgressBar != null) {
+                // The surface may be recreated and the model parsed again
+                loadProgressBar.setVisibility(View.VISIBLE);
+                handler.post(progressUpdater);
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error in onResume", e);
         }
@@ -124,9 +165,14 @@ public class MainActivity extends Activity {
     @Override
     protected void onPause() {
         try {
+            handler.removeCallbacks(progressUpdater);
             if (glSurfaceView != null) {
                 glSurfaceView.onPause();
             }
+            if (renderer != null) {
+                // Progress restarts from zero until the new surface reloads the model
+                renderer.onPause();
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error in onPause", e);
         }
@@ -0,0 +1,368 @@
+package edu.lasalle.oaxaca.modelado3d;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+// Generates smooth vertex normals and tangents for a triangle mesh.
+//
+// The mesh is given as shared positions (3 floats each) and one position index
+// per triangle corner. Every pass writes only to the slots of the face or corner
+// it owns: face data first, then each corner gathers from its neighbours through
+// a position -> corner adjacency table (CSR), so the parallel version needs no
+// locks or atomics and gives exactly the same result as the sequential one.
+public class MeshProcessor {
+
+    public enum Weighting {
+        AREA,  // Larger faces contribute more
+        ANGLE  // Each face contributes by the angle it has at the vertex
+    }
+
+    // Faces meeting at a sharper angle than this keep a hard edge
+    public static final float DEFAULT_CREASE_ANGLE = 60.0f;
+
+    // Work items below this size are not split further
+    private static final int PARALLEL_THRESHOLD = 4096;
+
+    private static final float EPSILON = 1e-12f;
+
+    private final float[] positions;
+    private final int[] corners;
+    private final int numTriangles;
+    private final boolean parallel;
+
+    // Per face: unit normal and area; per corner: interior angle
+    private final float[] faceNormals;
+    private final float[] faceAreas;
+    private final float[] cornerAngles;
+
+    // Corners that use each position: adjCorners[adjStart[p] .. adjStart[p + 1])
+    private final int[] adjStart;
+    private final int[] adjCorners;
+
+    public MeshProcessor(float[] positions, int[] corners, boolean parallel) {
+        this.positions = positions;
+        this.corners = corners;
+        this.numTriangles = corners.length / 3;
+        this.parallel = parallel;
+
+        faceNormals = new float[numTriangles * 3];
+        faceAreas = new float[numTriangles];
+        cornerAngles = new float[numTriangles * 3];
+        forRange(numTriangles, new RangeBody() {
+            @Override
+            public void run(int from, int to) {
+                computeFaceData(from, to);
+            }
+        });
+
+        // Counting sort of the corners by position; linear, so it stays sequential
+        int numPositions = positions.length / 3;
+        adjStart = new int[numPositions + 1];
+        for (int c = 0; c < corners.length; c++) {
+            adjStart[corners[c] + 1]++;
+        }
+        for (int p = 0; p < numPositions; p++) {
+            adjStart[p + 1] += adjStart[p];
+        }
+        adjCorners = new int[corners.length];
+        int[] fill = new int[numPositions];
+        for (int c = 0; c < corners.length; c++) {
+            int p = corners[c];
+            adjCorners[adjStart[p] + fill[p]++] = c;
+        }
+    }
+
+    // Returns one normal (3 floats) per corner
+    public float[] computeNormals(final Weighting weighting, float creaseAngle) {
+        final float cosCrease = (float) Math.cos(Math.toRadians(creaseAngle));
+        final float[] normals = new float[corners.length * 3];
+        forRange(corners.length, new RangeBody() {
+            @Override
+            public void run(int from, int to) {
+                computeCornerNormals(from, to, weighting, cosCrease, normals);
+            }
+        });
+        return normals;
+    }
+
+    // Returns one tangent (4 floats) per corner, following the MikkTSpace
+    // conventions: angle weighted, orthogonal to the given corner normal, split at
+    // creases, UV seams and mirrored UVs, and w = +1/-1 so that the bitangent is
+    // w * cross(normal, tangent)
+    public float[] computeTangents(final float[] normals, final float[] texCoords, float creaseAngle) {
+        final float cosCrease = (float) Math.cos(Math.toRadians(creaseAngle));
+
+        // Per face tangent and bitangent from the UV mapping
+        final float[] faceTangents = new float[numTriangles * 3];
+        final float[] faceBitangents = new float[numTriangles * 3];
+        final boolean[] faceMirrored = new boolean[numTriangles];
+        forRange(numTriangles, new RangeBody() {
+            @Override
+            public void run(int from, int to) {
+                computeFaceTangents(from, to, texCoords, faceTangents, faceBitangents, faceMirrored);
+            }
+        });
+
+        final float[] tangents = new float[corners.length * 4];
+        forRange(corners.length, new RangeBody() {
+            @Override
+            public void run(int from, int to) {
+                computeCornerTangents(from, to, normals, texCoords, cosCrease,
+                        faceTangents, faceBitangents, faceMirrored, tangents);
+            }
+        });
+        return tangents;
+    }
+
+    private void computeFaceData(int from, int to) {
+        for (int f = from; f < to; f++) {
+            int i0 = corners[f * 3] * 3;
+            int i1 = corners[f * 3 + 1] * 3;
+            int i2 = corners[f * 3 + 2] * 3;
+
+            float e1x = positions[i1] - positions[i0];
+            float e1y = positions[i1 + 1] - positions[i0 + 1];
+            float e1z = positions[i1 + 2] - positions[i0 + 2];
+            float e2x = positions[i2] - positions[i0];
+            float e2y = positions[i2 + 1] - positions[i0 + 1];
+            float e2z = positions[i2 + 2] - positions[i0 + 2];
+
+            // Cross product, its length is twice the area
+            float nx = e1y * e2z - e1z * e2y;
+            float ny = e1z * e2x - e1x * e2z;
+            float nz = e1x * e2y - e1y * e2x;
+            float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+
+            if (length > EPSILON) {
+                faceNormals[f * 3] = nx / length;
+                faceNormals[f * 3 + 1] = ny / length;
+                faceNormals[f * 3 + 2] = nz / length;
+            }
+            faceAreas[f] = length * 0.5f;
+
+            cornerAngles[f * 3] = angle(i0, i1, i2);
+            cornerAngles[f * 3 + 1] = angle(i1, i2, i0);
+            cornerAngles[f * 3 + 2] = angle(i2, i0, i1);
+        }
+    }
+
+    // Interior angle at position a of the triangle (a, b, c)
+    private float angle(int a, int b, int c) {
+        float ux = positions[b] - positions[a];
+        float uy = positions[b + 1] - positions[a + 1];
+        float uz = positions[b + 2] - positions[a + 2];
+        float vx = positions[c] - positions[a];
+        float vy = positions[c + 1] - positions[a + 1];
+        float vz = positions[c + 2] - positions[a + 2];
+        float lengths = (float) Math.sqrt((ux * ux + uy * uy + uz * uz) * (vx * vx + vy * vy + vz * vz));
+        if (lengths <= EPSILON) return 0.0f;
+        float cos = (ux * vx + uy * vy + uz * vz) / lengths;
+        return (float) Math.acos(Math.max(-1.0f, Math.min(1.0f, cos)));
+    }
+
+    private void computeCornerNormals(int from, int to, Weighting weighting, float cosCrease, float[] normals) {
+        for (int c = from; c < to; c++) {
+            int face = c / 3;
+            int p = corners[c];
+            float sx = 0, sy = 0, sz = 0;
+
+            for (int k = adjStart[p]; k < adjStart[p + 1]; k++) {
+                int other = adjCorners[k];
+                int otherFace = other / 3;
+                if (!sameSmoothingGroup(face, otherFace, cosCrease)) continue;
+
+                float weight = weighting == Weighting.AREA ? faceAreas[otherFace] : cornerAngles[other];
+                sx += faceNormals[otherFace * 3] * weight;
+                sy += faceNormals[otherFace * 3 + 1] * weight;
+                sz += faceNormals[otherFace * 3 + 2] * weight;
+            }
+
+            float length = (float) Math.sqrt(sx * sx + sy * sy + sz * sz);
+            if (length > EPSILON) {
+                normals[c * 3] = sx / length;
+                normals[c * 3 + 1] = sy / length;
+                normals[c * 3 + 2] = sz / length;
+            } else {
+                // Degenerate geometry: same default as ObjLoader
+                normals[c * 3] = 0.0f;
+                normals[c * 3 + 1] = 1.0f;
+                normals[c * 3 + 2] = 0.0f;
+            }
+        }
+    }
+
+    private boolean sameSmoothingGroup(int face, int otherFace, float cosCrease) {
+        if (face == otherFace) return true;
+        float dot = faceNormals[face * 3] * faceNormals[otherFace * 3]
+                + faceNormals[face * 3 + 1] * faceNormals[otherFace * 3 + 1]
+                + faceNormals[face * 3 + 2] * faceNormals[otherFace * 3 + 2];
+        return dot >= cosCrease;
+    }
+
+    private void computeFaceTangents(int from, int to, float[] texCoords,
+                                     float[] faceTangents, float[] faceBitangents, boolean[] faceMirrored) {
+        for (int f = from; f < to; f++) {
+            int i0 = corners[f * 3] * 3;
+            int i1 = corners[f * 3 + 1] * 3;
+            int i2 = corners[f * 3 + 2] * 3;
+
+            float e1x = positions[i1] - positions[i0];
+            float e1y = positions[i1 + 1] - positions[i0 + 1];
+            float e1z = positions[i1 + 2] - positions[i0 + 2];
+            float e2x = positions[i2] - positions[i0];
+            float e2y = positions[i2 + 1] - positions[i0 + 1];
+            float e2z = positions[i2 + 2] - positions[i0 + 2];
+
+            float du1 = texCoords[(f * 3 + 1) * 2] - texCoords[f * 3 * 2];
+            float dv1 = texCoords[(f * 3 + 1) * 2 + 1] - texCoords[f * 3 * 2 + 1];
+            float du2 = texCoords[(f * 3 + 2) * 2] - texCoords[f * 3 * 2];
+            float dv2 = texCoords[(f * 3 + 2) * 2 + 1] - texCoords[f * 3 * 2 + 1];
+
+            // Signed UV area: negative when the texture is mirrored on this face
+            float det = du1 * dv2 - du2 * dv1;
+            faceMirrored[f] = det < 0.0f;
+
+            // Faces without a usable UV mapping keep a zero tangent
+            if (Math.abs(det) <= EPSILON) continue;
+            float r = 1.0f / det;
+
+            faceTangents[f * 3] = (e1x * dv2 - e2x * dv1) * r;
+            faceTangents[f * 3 + 1] = (e1y * dv2 - e2y * dv1) * r;
+            faceTangents[f * 3 + 2] = (e1z * dv2 - e2z * dv1) * r;
+            faceBitangents[f * 3] = (e2x * du1 - e1x * du2) * r;
+            faceBitangents[f * 3 + 1] = (e2y * du1 - e1y * du2) * r;
+            faceBitangents[f * 3 + 2] = (e2z * du1 - e1z * du2) * r;
+        }
+    }
+
+    private void computeCornerTangents(int from, int to, float[] normals, float[] texCoords, float cosCrease,
+                                       float[] faceTangents, float[] faceBitangents, boolean[] faceMirrored,
+                                       float[] tangents) {
+        // Sums for the current corner; local to this range, so tasks do not share them
+        float[] tangentSum = new float[3];
+        float[] bitangentSum = new float[3];
+
+        for (int c = from; c < to; c++) {
+            int face = c / 3;
+            int p = corners[c];
+            float nx = normals[c * 3];
+            float ny = normals[c * 3 + 1];
+            float nz = normals[c * 3 + 2];
+
+            tangentSum[0] = tangentSum[1] = tangentSum[2] = 0;
+            bitangentSum[0] = bitangentSum[1] = bitangentSum[2] = 0;
+
+            for (int k = adjStart[p]; k < adjStart[p + 1]; k++) {
+                int other = adjCorners[k];
+                int otherFace = other / 3;
+                if (!sameSmoothingGroup(face, otherFace, cosCrease)) continue;
+                // Split at UV seams and where the mapping is mirrored
+                if (texCoords[other * 2] != texCoords[c * 2]
+                        || texCoords[other * 2 + 1] != texCoords[c * 2 + 1]) continue;
+                if (faceMirrored[otherFace] != faceMirrored[face]) continue;
+
+                float weight = cornerAngles[other];
+                addProjected(faceTangents, otherFace, nx, ny, nz, weight, tangentSum);
+                addProjected(faceBitangents, otherFace, nx, ny, nz, weight, bitangentSum);
+            }
+
+            float tx = tangentSum[0];
+            float ty = tangentSum[1];
+            float tz = tangentSum[2];
+            float bx = bitangentSum[0];
+            float by = bitangentSum[1];
+            float bz = bitangentSum[2];
+
+            float length = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+            if (length > EPSILON) {
+                tx /= length;
+                ty /= length;
+                tz /= length;
+            } else {
+                // No UV mapping: any direction perpendicular to the normal
+                if (Math.abs(nx) < 0.9f) {
+                    tx = 0;
+                    ty = nz;
+                    tz = -ny;
+                } else {
+                    tx = -nz;
+                    ty = 0;
+                    tz = nx;
+                }
+                length = (float) Math.sqrt(tx * tx + ty * ty + tz * tz);
+                tx /= length;
+                ty /= length;
+                tz /= length;
+            }
+
+            // Handedness: does cross(n, t) point along the bitangent?
+            float cx = ny * tz - nz * ty;
+            float cy = nz * tx - nx * tz;
+            float cz = nx * ty - ny * tx;
+            float handedness = (cx * bx + cy * by + cz * bz) < 0.0f ? -1.0f : 1.0f;
+
+            tangents[c * 4] = tx;
+            tangents[c * 4 + 1] = ty;
+            tangents[c * 4 + 2] = tz;
+            tangents[c * 4 + 3] = handedness;
+        }
+    }
+
+    // Adds the face vector, projected on the plane of the normal and normalized, times
+    // the weight. As in MikkTSpace, normalizing first keeps faces with compressed UVs
+    // (long face tangents) from dominating the sum
+    private static void addProjected(float[] faceVectors, int face, float nx, float ny, float nz,
+                                     float weight, float[] sum) {
+        float vx = faceVectors[face * 3];
+        float vy = faceVectors[face * 3 + 1];
+        float vz = faceVectors[face * 3 + 2];
+        float dot = vx * nx + vy * ny + vz * nz;
+        vx -= dot * nx;
+        vy -= dot * ny;
+        vz -= dot * nz;
+
+        // Faces without a usable UV mapping add nothing
+        float length = (float) Math.sqrt(vx * vx + vy * vy + vz * vz);
+        if (length <= EPSILON) return;
+        sum[0] += vx / length * weight;
+        sum[1] += vy / length * weight;
+        sum[2] += vz / length * weight;
+    }
+
+    // Body of a loop over [0, count) that may be split across threads
+    private interface RangeBody {
+        void run(int from, int to);
+    }
+
+    private void forRange(int count, RangeBody body) {
+        if (!parallel || count <= PARALLEL_THRESHOLD) {
+            body.run(0, count);
+        } else {
+            ForkJoinPool.commonPool().invoke(new RangeTask(body, 0, count));
+        }
+    }
+
+    private static class RangeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeBody body;
+        private final int from;
+        private final int to;
+
+        RangeTask(RangeBody body, int from, int to) {
+            this.body = body;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= PARALLEL_THRESHOLD) {
+                body.run(from, to);
+            } else {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(body, from, middle), new RangeTask(body, middle, to));
+            }
+        }
+    }
+}
@@ -9,6 +9,12 @@ import android.opengl.GLUtils;
 import android.opengl.Matrix;
 import android.util.Log;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
 import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
@@ -50,6 +56,20 @@ public class MyRenderer implements GLSurfaceView.Renderer {
     // OBJ model
     private ObjLoader objModel;
 
+    // Progressive loading: draw the mesh while it is still being parsed
+    private static final boolean USE_STREAMING_LOAD = true;
+    private static final int MAX_BATCHES_PER_FRAME = 2;
+    private static final int VERTEX_STRIDE = StreamingObjLoader.FLOATS_PER_VERTEX * 4;
+
+    private volatile StreamingObjLoader streamingLoader;
+    private final int[] vboId = new int[1];
+    private int vboCapacity = 0;        // Vertices reserved in the VBO
+    private int streamedVertexCount = 0; // Vertices uploaded so far
+    private boolean streamingComplete = false;
+    private FloatBuffer uploadBuffer;
+    // Batches kept while loading, to refill the VBO if it has to grow
+    private final List<StreamingObjLoader.Batch> streamedBatches = new ArrayList<>();
+
     // Shader source code
     private final String vertexShaderCode =
             "uniform mat4 uMVPMatrix;" +
@@ -116,7 +136,11 @@ public class MyRenderer implements GLSurfaceView.Renderer {
             loadTexture();
 
             // Load OBJ model
-            objModel = new ObjLoader(context, R.raw.old);
+            if (USE_STREAMING_LOAD) {
+                startStreamingLoad(R.raw.old);
+            } else {
+                objModel = new ObjLoader(context, R.raw.old);
+            }
 
             Log.d(TAG, "onSurfaceCreated completed successfully");
         } catch (Exception e) {
@@ -176,12 +200,35 @@ public class MyRenderer implements GLSurfaceView.Renderer {
             GLES20.glUniform1i(mTextureHandle, 0);
 
             // Draw model
-            drawModel();
+            if (USE_STREAMING_LOAD) {
+                uploadStreamedBatches();
+                drawStreamedModel();
+            } else {
+                drawModel();
+            }
         } catch (Exception e) {
             Log.e(TAG, "Error in onDrawFrame", e);
         }
     }
 
+    // Stop the current load; the GL context and its VBO are lost while paused
+    public void onPause() {
+        StreamingObjLoader loader = streamingLoader;
+        if (loader != null) {
+            loader.cancel();
+            streamingLoader = null;
+        }
+    }
+
+    // Fraction of the model file parsed so far, from 0 to 1
+    public float getLoadProgress() {
+        StreamingObjLoader loader = streamingLoader;
+        if (loader == null) {
+            return USE_STREAMING_LOAD ? 0.0f : 1.0f;
+        }
+        return loader.getProgress();
+    }
+
     // Handle rotation from touch events
     public void handleRotation(float dx, float dy) {
         rotationY += dx * ROTATION_FACTOR;
@@ -257,6 +304,113 @@ public class MyRenderer implements GLSurfaceView.Renderer {
         GLES20.glDisableVertexAttribArray(mTexCoordHandle);
     }
 
+    // Start parsing the model in the background and reserve its VBO
+    private void startStreamingLoad(int resourceId) {
+        // A new GL context means the old VBO is gone, so parse again from the start
+        if (streamingLoader != null) {
+            streamingLoader.cancel();
+        }
+        streamedBatches.clear();
+        streamedVertexCount = 0;
+        streamingComplete = false;
+
+        StreamingObjLoader loader = new StreamingObjLoader(context, resourceId);
+        loader.start();
+        streamingLoader = loader;
+
+        GLES20.glGenBuffers(1, vboId, 0);
+        allocateVbo(loader.getEstimatedVertexCount());
+
+        if (uploadBuffer == null) {
+            ByteBuffer bb = ByteBuffer.allocateDirect(
+                    StreamingObjLoader.FACES_PER_BATCH * 3 * VERTEX_STRIDE);
+            bb.order(ByteOrder.nativeOrder());
+            uploadBuffer = bb.asFloatBuffer();
+        }
+    }
+
+    // (Re)create the VBO storage for the given number of vertices
+    private void allocateVbo(int vertexCapacity) {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboId[0]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexCapacity * VERTEX_STRIDE, null, GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        vboCapacity = vertexCapacity;
+    }
+
+    // Append the batches the loader has finished into the VBO
+    private void uploadStreamedBatches() {
+        StreamingObjLoader loader = streamingLoader;
+        if (loader == null || streamingComplete) return;
+
+        for (int i = 0; i < MAX_BATCHES_PER_FRAME; i++) {
+            StreamingObjLoader.Batch batch = loader.pollBatch();
+            if (batch == null) break;
+
+            int end = batch.firstVertex + batch.vertexCount;
+            if (end > vboCapacity) {
+                // The size estimate was too small: grow and upload again what we have
+                allocateVbo(Math.max(vboCapacity * 2, end));
+                for (StreamingObjLoader.Batch previous : streamedBatches) {
+                    writeBatch(previous);
+                }
+                Log.d(TAG, "VBO grown to " + vboCapacity + " vertices");
+            }
+
+            // Batches normally append; a batch with regenerated normals overwrites its range
+            writeBatch(batch);
+            streamedVertexCount = Math.max(streamedVertexCount, end);
+            streamedBatches.add(batch);
+        }
+
+        if (loader.isDone()) {
+            // Everything is on the GPU, the CPU copies are no longer needed
+            streamedBatches.clear();
+            streamingComplete = true;
+            Log.d(TAG, "Streaming load finished with " + streamedVertexCount + " vertices");
+        }
+    }
+
+    // Copy one batch into the VBO at its first vertex
+    private void writeBatch(StreamingObjLoader.Batch batch) {
+        uploadBuffer.clear();
+        uploadBuffer.put(batch.data, 0, batch.vertexCount * StreamingObjLoader.FLOATS_PER_VERTEX);
+        uploadBuffer.position(0);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboId[0]);
+        GLES20.glBufferSubData(GLES20.GL_ARRAY_BUFFER, batch.firstVertex * VERTEX_STRIDE,
+                batch.vertexCount * VERTEX_STRIDE, uploadBuffer);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
+    // Draw the part of the model that has been uploaded so far
+    private void drawStreamedModel() {
+        if (streamedVertexCount == 0) {
+            return;
+        }
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboId[0]);
+
+        // Enable vertex attributes
+        GLES20.glEnableVertexAttribArray(mPositionHandle);
+        GLES20.glEnableVertexAttribArray(mNormalHandle);
+        GLES20.glEnableVertexAttribArray(mTexCoordHandle);
+
+        // Interleaved data: position, normal, texture coordinate
+        GLES20.glVertexAttribPointer(mPositionHandle, 3, GLES20.GL_FLOAT, false, VERTEX_STRIDE, 0);
+        GLES20.glVertexAttribPointer(mNormalHandle, 3, GLES20.GL_FLOAT, false, VERTEX_STRIDE, 3 * 4);
+        GLES20.glVertexAttribPointer(mTexCoordHandle, 2, GLES20.GL_FLOAT, false, VERTEX_STRIDE, 6 * 4);
+
+        // Draw the loaded prefix of the triangles
+        GLES20.glDrawArrays(GLES20.GL_TRIANGLES, 0, streamedVertexCount);
+
+        // Disable vertex attributes
+        GLES20.glDisableVertexAttribArray(mPositionHandle);
+        GLES20.glDisableVertexAttribArray(mNormalHandle);
+        GLES20.glDisableVertexAttribArray(mTexCoordHandle);
+
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+    }
+
     // Helper method to load shaders
     private int loadShader(int type, String shaderCode) {
         int shader = GLES20.glCreateShader(type);
@@ -12,6 +12,7 @@ import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 public class ObjLoader {
@@ -22,24 +23,34 @@ public class ObjLoader {
     private FloatBuffer normalBuffer;
     private FloatBuffer texCoordBuffer;
     private ShortBuffer indexBuffer;
+    private FloatBuffer tangentBuffer;
     private int numFaces = 0;
 
     // Constructor to load an OBJ file from resources
     public ObjLoader(Context context, int resourceId) {
+        this(context, resourceId, false);
+    }
+
+    // Same, optionally building the tangents needed for normal mapping
+    public ObjLoader(Context context, int resourceId, boolean computeTangents) {
         try {
-            loadObj(context, resourceId);
+            loadObj(context, resourceId, computeTangents);
         } catch (IOException e) {
             Log.e(TAG, "Error loading OBJ file", e);
         }
     }
 
-    private void loadObj(Context context, int resourceId) throws IOException {
+    private void loadObj(Context context, int resourceId, boolean computeTangents) throws IOException {
         // Initialize lists to store data
         List<Float> vertices = new ArrayList<>();
         List<Float> normals = new ArrayList<>();
         List<Float> texCoords = new ArrayList<>();
         List<Short> indices = new ArrayList<>();
 
+        // Position index of every corner and the corners without a normal
+        List<Integer> positionIndices = new ArrayList<>();
+        BitSet missingNormals = new BitSet();
+
         // Lists to store model data (v, vn, vt)
         List<Float> tempVertices = new ArrayList<>();
         List<Float> tempNormals = new ArrayList<>();
@@ -87,6 +98,7 @@ public class ObjLoader {
 
                     // Get vertex index (OBJ is 1-based, so subtract 1)
                     int vertexIdx = Integer.parseInt(faceParts[0]) - 1;
+                    positionIndices.add(vertexIdx);
 
                     // Add vertex coordinates
                     vertices.add(tempVertices.get(vertexIdx * 3));
@@ -111,7 +123,8 @@ public class ObjLoader {
                         normals.add(tempNormals.get(normalIdx * 3 + 1));
                         normals.add(tempNormals.get(normalIdx * 3 + 2));
                     } else {
-                        // Default normal
+                        // Placeholder, replaced by a generated normal below
+                        missingNormals.set(positionIndices.size() - 1);
                         normals.add(0.0f);
                         normals.add(1.0f);
                         normals.add(0.0f);
@@ -126,6 +139,9 @@ public class ObjLoader {
 
         reader.close();
 
+        generateNormalsAndTangents(tempVertices, positionIndices, normals, texCoords,
+                missingNormals, computeTangents && !tempTexCoords.isEmpty());
+
         // Create GPU buffers
         vertexBuffer = createFloatBuffer(vertices);
         normalBuffer = createFloatBuffer(normals);
@@ -135,6 +151,50 @@ public class ObjLoader {
         Log.d(TAG, "Loaded OBJ with " + numFaces + " faces");
     }
 
+    // Fill in smooth normals for corners without one and, if requested, build
+    // the tangents needed for normal mapping
+    private void generateNormalsAndTangents(List<Float> tempVertices, List<Integer> positionIndices,
+                                            List<Float> normals, List<Float> texCoords,
+                                            BitSet missingNormals, boolean tangents) {
+        if (positionIndices.isEmpty() || (missingNormals.isEmpty() && !tangents)) return;
+
+        float[] positions = toFloatArray(tempVertices);
+        int[] corners = new int[positionIndices.size()];
+        for (int i = 0; i < corners.length; i++) {
+            corners[i] = positionIndices.get(i);
+        }
+        MeshProcessor processor = new MeshProcessor(positions, corners, true);
+
+        if (!missingNormals.isEmpty()) {
+            float[] generated = processor.computeNormals(MeshProcessor.Weighting.ANGLE,
+                    MeshProcessor.DEFAULT_CREASE_ANGLE);
+            for (int c = missingNormals.nextSetBit(0); c >= 0; c = missingNormals.nextSetBit(c + 1)) {
+                normals.set(c * 3, generated[c * 3]);
+                normals.set(c * 3 + 1, generated[c * 3 + 1]);
+                normals.set(c * 3 + 2, generated[c * 3 + 2]);
+            }
+            Log.d(TAG, "Generated normals for " + missingNormals.cardinality() + " vertices");
+        }
+
+        if (tangents) {
+            float[] generated = processor.computeTangents(toFloatArray(normals), toFloatArray(texCoords),
+                    MeshProcessor.DEFAULT_CREASE_ANGLE);
+            ByteBuffer bb = ByteBuffer.allocateDirect(generated.length * 4);
+            bb.order(ByteOrder.nativeOrder());
+            tangentBuffer = bb.asFloatBuffer();
+            tangentBuffer.put(generated);
+            tangentBuffer.position(0);
+        }
+    }
+
+    private float[] toFloatArray(List<Float> data) {
+        float[] array = new float[data.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = data.get(i);
+        }
+        return array;
+    }
+
     // Create a float buffer from a list of floats
     private FloatBuffer createFloatBuffer(List<Float> data) {
         if (data.isEmpty()) return null;
@@ -180,6 +240,11 @@ public class ObjLoader {
         return texCoordBuffer;
     }
 
+    // Tangents (x, y, z, handedness) per vertex, null unless requested and the model is textured
+    public FloatBuffer getTangentBuffer() {
+        return tangentBuffer;
+    }
+
     public ShortBuffer getIndexBuffer() {
         return indexBuffer;
     }
@@ -0,0 +1,394 @@
+package edu.lasalle.oaxaca.modelado3d;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.BufferedReader;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+// Parses an OBJ file on a background thread and publishes the triangles in
+// batches, so the renderer can draw the part of the mesh that is already loaded.
+public class StreamingObjLoader implements Runnable {
+    private static final String TAG = "StreamingObjLoader";
+
+    // Faces per published batch
+    public static final int FACES_PER_BATCH = 8192;
+
+    // Interleaved vertex layout: position (3), normal (3), texture coordinate (2)
+    public static final int FLOATS_PER_VERTEX = 8;
+
+    // Batches waiting for the renderer; the parser blocks when this is full
+    private static final int QUEUE_CAPACITY = 4;
+
+    // Rough lower bound of bytes per face used to size the first GPU buffer
+    private static final int BYTES_PER_FACE_ESTIMATE = 64;
+
+    // A group of complete triangles ready to be uploaded at firstVertex
+    public static class Batch {
+        public final float[] data;
+        public final int firstVertex;
+        public final int vertexCount;
+
+        Batch(float[] data, int firstVertex, int vertexCount) {
+            this.data = data;
+            this.firstVertex = firstVertex;
+            this.vertexCount = vertexCount;
+        }
+    }
+
+    private final Context context;
+    private final int resourceId;
+    private final BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+
+    private volatile long totalBytes;
+    private volatile long bytesRead = 0;
+    private volatile boolean finished = false;
+    private Thread thread;
+    private InputStream source;
+
+    // The context is only used by start() to open the resource
+    public StreamingObjLoader(Context context, int resourceId) {
+        this.context = context;
+        this.resourceId = resourceId;
+    }
+
+    // Start parsing on a background thread
+    public void start() {
+        // Known before the thread runs, so the renderer can size its buffer from it
+        totalBytes = resourceLength();
+        source = context.getResources().openRawResource(resourceId);
+        thread = new Thread(this, TAG);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    // Stop parsing, e.g. when the GL context that receives the batches is lost
+    public void cancel() {
+        if (thread != null) {
+            thread.interrupt();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            loadObj(source);
+        } catch (InterruptedException e) {
+            Log.d(TAG, "Streaming load cancelled");
+        } catch (IOException | RuntimeException e) {
+            // Parse errors are handled in loadObj; this is the smoothing pass failing
+            Log.e(TAG, "Error loading OBJ file", e);
+        } finally {
+            finished = true;
+        }
+    }
+
+    // Parses the stream and publishes its batches; package-private so tests can
+    // feed it a stream without an Android Context
+    void loadObj(InputStream in) throws IOException, InterruptedException {
+        // Growable arrays for model data (v, vn, vt)
+        float[] tempVertices = new float[3 * 1024];
+        float[] tempNormals = new float[3 * 1024];
+        float[] tempTexCoords = new float[2 * 1024];
+        int vertexFloats = 0;
+        int normalFloats = 0;
+        int texCoordFloats = 0;
+
+        float[] batch = new float[FACES_PER_BATCH * 3 * FLOATS_PER_VERTEX];
+        int batchFaces = 0;
+        int numFaces = 0;
+
+        // Position of every corner, to smooth the normals of faces without one once
+        // the whole mesh is known
+        int[] positionIndices = new int[3 * FACES_PER_BATCH];
+        // Created at the first face without a normal; only batches from there on are kept
+        // to replace their flat normals with smooth ones
+        BitSet missingNormals = null;
+        List<Batch> published = null;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new CountingInputStream(in)));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+                if (line.startsWith("v ")) {
+                    // Vertex
+                    String[] parts = line.split("\\s+");
+                    if (parts.length >= 4) {
+                        if (vertexFloats + 3 > tempVertices.length) {
+                            tempVertices = grow(tempVertices);
+                        }
+                        tempVertices[vertexFloats++] = Float.parseFloat(parts[1]);
+                        tempVertices[vertexFloats++] = Float.parseFloat(parts[2]);
+                        tempVertices[vertexFloats++] = Float.parseFloat(parts[3]);
+                    }
+                } else if (line.startsWith("vn ")) {
+                    // Normal
+                    String[] parts = line.split("\\s+");
+                    if (parts.length >= 4) {
+                        if (normalFloats + 3 > tempNormals.length) {
+                            tempNormals = grow(tempNormals);
+                        }
+                        tempNormals[normalFloats++] = Float.parseFloat(parts[1]);
+                        tempNormals[normalFloats++] = Float.parseFloat(parts[2]);
+                        tempNormals[normalFloats++] = Float.parseFloat(parts[3]);
+                    }
+                } else if (line.startsWith("vt ")) {
+                    // Texture coordinate
+                    String[] parts = line.split("\\s+");
+                    if (parts.length >= 3) {
+                        if (texCoordFloats + 2 > tempTexCoords.length) {
+                            tempTexCoords = grow(tempTexCoords);
+                        }
+                        tempTexCoords[texCoordFloats++] = Float.parseFloat(parts[1]);
+                        tempTexCoords[texCoordFloats++] = Float.parseFloat(parts[2]);
+                    }
+                } else if (line.startsWith("f ")) {
+                    // Face - same triangle rules as ObjLoader (first 3 vertices)
+                    String[] parts = line.split("\\s+");
+                    int offset = batchFaces * 3 * FLOATS_PER_VERTEX;
+                    int faceOffset = offset;
+                    boolean faceMissingNormal = false;
+                    if (numFaces * 3 + 3 > positionIndices.length) {
+                        positionIndices = grow(positionIndices);
+                    }
+
+                    for (int i = 1; i <= 3; i++) {
+                        String[] faceParts = parts[i].split("/");
+
+                        // Vertex coordinates (OBJ is 1-based, so subtract 1)
+                        int vertexIdx = Integer.parseInt(faceParts[0]) - 1;
+                        checkIndex(vertexIdx, 3, vertexFloats, line);
+                        positionIndices[numFaces * 3 + i - 1] = vertexIdx;
+                        batch[offset] = tempVertices[vertexIdx * 3];
+                        batch[offset + 1] = tempVertices[vertexIdx * 3 + 1];
+                        batch[offset + 2] = tempVertices[vertexIdx * 3 + 2];
+
+                        // Normal coordinates if available
+                        if (faceParts.length > 2) {
+                            int normalIdx = Integer.parseInt(faceParts[2]) - 1;
+                            checkIndex(normalIdx, 3, normalFloats, line);
+                            batch[offset + 3] = tempNormals[normalIdx * 3];
+                            batch[offset + 4] = tempNormals[normalIdx * 3 + 1];
+                            batch[offset + 5] = tempNormals[normalIdx * 3 + 2];
+                        } else {
+                            // Filled with the face normal below
+                            if (missingNormals == null) {
+                                missingNormals = new BitSet();
+                                published = new ArrayList<>();
+                            }
+                            missingNormals.set(numFaces * 3 + i - 1);
+                            faceMissingNormal = true;
+                        }
+
+                        // Texture coordinates if available
+                        if (faceParts.length > 1 && !faceParts[1].isEmpty()) {
+                            int texIdx = Integer.parseInt(faceParts[1]) - 1;
+                            checkIndex(texIdx, 2, texCoordFloats, line);
+                            batch[offset + 6] = tempTexCoords[texIdx * 2];
+                            batch[offset + 7] = tempTexCoords[texIdx * 2 + 1];
+                        } else {
+                            // Default texture coordinates
+                            batch[offset + 6] = 0.0f;
+                            batch[offset + 7] = 0.0f;
+                        }
+
+                        offset += FLOATS_PER_VERTEX;
+                    }
+                    if (faceMissingNormal) {
+                        setFlatNormals(batch, faceOffset, missingNormals, numFaces * 3);
+                    }
+                    numFaces++;
+
+                    // Hand a full batch to the renderer
+                    if (++batchFaces == FACES_PER_BATCH) {
+                        Batch full = new Batch(batch, (numFaces - batchFaces) * 3, batchFaces * 3);
+                        if (published != null) published.add(full);
+                        queue.put(full);
+                        batch = new float[FACES_PER_BATCH * 3 * FLOATS_PER_VERTEX];
+                        batchFaces = 0;
+                    }
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            // Malformed input: stop at the bad line but still show the faces before it
+            Log.e(TAG, "Error parsing OBJ file after " + numFaces + " faces", e);
+        } finally {
+            reader.close();
+        }
+
+        // Publish the remaining faces
+        if (batchFaces > 0) {
+            Batch last = new Batch(batch, (numFaces - batchFaces) * 3, batchFaces * 3);
+            if (published != null) published.add(last);
+            queue.put(last);
+        }
+
+        if (missingNormals != null) {
+            publishSmoothNormals(tempVertices, vertexFloats, positionIndices, numFaces * 3,
+                    missingNormals, published);
+        }
+
+        Log.d(TAG, "Streamed OBJ with " + numFaces + " faces");
+    }
+
+    // The growable arrays have unused slots at the end, so reject indices past the data read
+    private static void checkIndex(int index, int stride, int floatCount, String line) throws IOException {
+        if (index < 0 || (index + 1) * stride > floatCount) {
+            throw new IOException("Invalid index " + (index + 1) + " in line: " + line);
+        }
+    }
+
+    // Flat normal for the corners of the face at faceOffset that have none
+    private static void setFlatNormals(float[] batch, int faceOffset, BitSet missingNormals, int firstCorner) {
+        int v0 = faceOffset;
+        int v1 = faceOffset + FLOATS_PER_VERTEX;
+        int v2 = faceOffset + 2 * FLOATS_PER_VERTEX;
+        float e1x = batch[v1] - batch[v0];
+        float e1y = batch[v1 + 1] - batch[v0 + 1];
+        float e1z = batch[v1 + 2] - batch[v0 + 2];
+        float e2x = batch[v2] - batch[v0];
+        float e2y = batch[v2 + 1] - batch[v0 + 1];
+        float e2z = batch[v2 + 2] - batch[v0 + 2];
+        float nx = e1y * e2z - e1z * e2y;
+        float ny = e1z * e2x - e1x * e2z;
+        float nz = e1x * e2y - e1y * e2x;
+        float length = (float) Math.sqrt(nx * nx + ny * ny + nz * nz);
+        if (length > 0.0f) {
+            nx /= length;
+            ny /= length;
+            nz /= length;
+        } else {
+            // Degenerate face: default normal
+            nx = 0.0f;
+            ny = 1.0f;
+            nz = 0.0f;
+        }
+
+        for (int i = 0; i < 3; i++) {
+            if (!missingNormals.get(firstCorner + i)) continue;
+            int offset = faceOffset + i * FLOATS_PER_VERTEX;
+            batch[offset + 3] = nx;
+            batch[offset + 4] = ny;
+            batch[offset + 5] = nz;
+        }
+    }
+
+    // Replace the flat normals with smooth ones, re-publishing the affected batches
+    private void publishSmoothNormals(float[] tempVertices, int vertexFloats, int[] positionIndices,
+                                      int numCorners, BitSet missingNormals, List<Batch> published)
+            throws InterruptedException {
+        float[] positions = new float[vertexFloats];
+        System.arraycopy(tempVertices, 0, positions, 0, vertexFloats);
+        int[] corners = new int[numCorners];
+        System.arraycopy(positionIndices, 0, corners, 0, numCorners);
+
+        float[] normals = new MeshProcessor(positions, corners, true)
+                .computeNormals(MeshProcessor.Weighting.ANGLE, MeshProcessor.DEFAULT_CREASE_ANGLE);
+
+        for (Batch batch : published) {
+            int first = batch.firstVertex;
+            int end = first + batch.vertexCount;
+            if (missingNormals.nextSetBit(first) < 0 || missingNormals.nextSetBit(first) >= end) continue;
+
+            // The renderer may still hold the original array, so patch a copy
+            float[] data = batch.data.clone();
+            for (int c = missingNormals.nextSetBit(first); c >= 0 && c < end; c = missingNormals.nextSetBit(c + 1)) {
+                int offset = (c - first) * FLOATS_PER_VERTEX;
+                data[offset + 3] = normals[c * 3];
+                data[offset + 4] = normals[c * 3 + 1];
+                data[offset + 5] = normals[c * 3 + 2];
+            }
+            queue.put(new Batch(data, first, batch.vertexCount));
+        }
+        Log.d(TAG, "Generated normals for " + missingNormals.cardinality() + " vertices");
+    }
+
+    // Size of the resource in bytes, used for the load progress
+    private long resourceLength() {
+        try {
+            // Only works for resources stored uncompressed in the APK
+            AssetFileDescriptor afd = context.getResources().openRawResourceFd(resourceId);
+            long length = afd.getLength();
+            afd.close();
+            return length;
+        } catch (Exception e) {
+            // Compressed resource: available() reports the uncompressed size left
+            try {
+                InputStream in = context.getResources().openRawResource(resourceId);
+                long length = in.available();
+                in.close();
+                return length;
+            } catch (IOException ignored) {
+                return 0;
+            }
+        }
+    }
+
+    private static float[] grow(float[] data) {
+        float[] bigger = new float[data.length * 2];
+        System.arraycopy(data, 0, bigger, 0, data.length);
+        return bigger;
+    }
+
+    private static int[] grow(int[] data) {
+        int[] bigger = new int[data.length * 2];
+        System.arraycopy(data, 0, bigger, 0, data.length);
+        return bigger;
+    }
+
+    // Next batch for the renderer, or null if none is ready yet
+    public Batch pollBatch() {
+        return queue.poll();
+    }
+
+    // True once parsing ended and every batch was taken from the queue
+    public boolean isDone() {
+        return finished && queue.isEmpty();
+    }
+
+    // Initial number of vertices to reserve on the GPU
+    public int getEstimatedVertexCount() {
+        long faces = totalBytes / BYTES_PER_FACE_ESTIMATE;
+        return (int) Math.max(FACES_PER_BATCH, faces) * 3;
+    }
+
+    // Fraction of the file consumed by the parser, from 0 to 1
+    public float getProgress() {
+        if (finished) return 1.0f;
+        if (totalBytes <= 0) return 0.0f;
+        return Math.min(1.0f, (float) bytesRead / totalBytes);
+    }
+
+    // Counts the bytes the parser has pulled from the resource
+    private class CountingInputStream extends FilterInputStream {
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) bytesRead++;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int count) throws IOException {
+            int n = super.read(buffer, offset, count);
+            if (n > 0) bytesRead += n;
+            return n;
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package edu.lasalle.oaxaca.modelado3d;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the normal and tangent generation of {@link MeshProcessor}.
+ */
+public class MeshProcessorTest {
+    private static final float DELTA = 1e-5f;
+
+    // Relative to the module directory, where Gradle runs local unit tests
+    private static final File[] BUNDLED_MESHES = {
+            new File("src/main/res/raw/old.obj"),
+            new File("src/main/res/raw/basenew.obj")
+    };
+
+    // Unit cube, two triangles per side, counter-clockwise seen from outside
+    private static final float[] CUBE_POSITIONS = {
+            0, 0, 0,  1, 0, 0,  1, 1, 0,  0, 1, 0,
+            0, 0, 1,  1, 0, 1,  1, 1, 1,  0, 1, 1
+    };
+    private static final int[] CUBE_CORNERS = {
+            0, 2, 1,  0, 3, 2,  // z = 0
+            4, 5, 6,  4, 6, 7,  // z = 1
+            0, 1, 5,  0, 5, 4,  // y = 0
+            3, 7, 6,  3, 6, 2,  // y = 1
+            0, 4, 7,  0, 7, 3,  // x = 0
+            1, 2, 6,  1, 6, 5   // x = 1
+    };
+
+    @Test
+    public void creaseAngle_keepsCubeEdgesHard() {
+        float[] normals = new MeshProcessor(CUBE_POSITIONS, CUBE_CORNERS, false)
+                .computeNormals(MeshProcessor.Weighting.ANGLE, MeshProcessor.DEFAULT_CREASE_ANGLE);
+
+        // Every corner gets the normal of its own side
+        assertNormal(normals, 0, 0, 0, -1);
+        assertNormal(normals, 6, 0, 0, 1);
+        assertNormal(normals, 12, 0, -1, 0);
+        assertNormal(normals, 30, 1, 0, 0);
+    }
+
+    @Test
+    public void noCrease_smoothsCubeCorners() {
+        float[] normals = new MeshProcessor(CUBE_POSITIONS, CUBE_CORNERS, false)
+                .computeNormals(MeshProcessor.Weighting.ANGLE, 180.0f);
+
+        // Each side meets the corner with a total angle of 90 degrees
+        float d = (float) (1.0 / Math.sqrt(3.0));
+        assertNormal(normals, 0, -d, -d, -d);  // Position (0, 0, 0)
+        assertNormal(normals, 7, d, -d, d);    // Position (1, 0, 1)
+    }
+
+    @Test
+    public void areaWeighting_favoursLargerFaces() {
+        // Two faces sharing position 0: a large one facing +z and a small one facing -x
+        float[] positions = {0, 0, 0,  4, 0, 0,  0, 4, 0,  0, -1, 0,  0, 0, 1};
+        int[] corners = {0, 1, 2,  0, 3, 4};
+
+        float[] normals = new MeshProcessor(positions, corners, false)
+                .computeNormals(MeshProcessor.Weighting.AREA, 180.0f);
+
+        // Areas are 8 and 0.5
+        float length = (float) Math.sqrt(8 * 8 + 0.5 * 0.5);
+        assertNormal(normals, 0, -0.5f / length, 0, 8 / length);
+    }
+
+    @Test
+    public void tangents_followTextureDirection() {
+        // Quad in the z = 0 plane with u along +x and v along +y
+        float[] positions = {0, 0, 0,  1, 0, 0,  1, 1, 0,  0, 1, 0};
+        int[] corners = {0, 1, 2,  0, 2, 3};
+        float[] texCoords = {0, 0,  1, 0,  1, 1,  0, 0,  1, 1,  0, 1};
+
+        MeshProcessor processor = new MeshProcessor(positions, corners, false);
+        float[] normals = processor.computeNormals(MeshProcessor.Weighting.ANGLE, MeshProcessor.DEFAULT_CREASE_ANGLE);
+        float[] tangents = processor.computeTangents(normals, texCoords, MeshProcessor.DEFAULT_CREASE_ANGLE);
+
+        for (int c = 0; c < corners.length; c++) {
+            assertNormal(normals, c, 0, 0, 1);
+            assertEquals(1.0f, tangents[c * 4], DELTA);
+            assertEquals(0.0f, tangents[c * 4 + 1], DELTA);
+            assertEquals(0.0f, tangents[c * 4 + 2], DELTA);
+            assertEquals(1.0f, tangents[c * 4 + 3], DELTA);
+        }
+    }
+
+    @Test
+    public void tangents_flipHandednessForMirroredTexture() {
+        // Same quad with u running along -x
+        float[] positions = {0, 0, 0,  1, 0, 0,  1, 1, 0,  0, 1, 0};
+        int[] corners = {0, 1, 2,  0, 2, 3};
+        float[] texCoords = {1, 0,  0, 0,  0, 1,  1, 0,  0, 1,  1, 1};
+
+        MeshProcessor processor = new MeshProcessor(positions, corners, false);
+        float[] normals = processor.computeNormals(MeshProcessor.Weighting.ANGLE, MeshProcessor.DEFAULT_CREASE_ANGLE);
+        float[] tangents = processor.computeTangents(normals, texCoords, MeshProcessor.DEFAULT_CREASE_ANGLE);
+
+        // Tangent along -x and the bitangent still along +y, so the handedness flips
+        for (int c = 0; c < corners.length; c++) {
+            assertEquals(-1.0f, tangents[c * 4], DELTA);
+            assertEquals(-1.0f, tangents[c * 4 + 3], DELTA);
+        }
+    }
+
+    @Test
+    public void tangents_ignoreUvScaleOfNeighbours() {
+        // Two coplanar faces with a 90 degree corner each at the origin. Face A maps u
+        // along +x; face B maps u along +y with UVs 10 times smaller
+        float[] positions = {0, 0, 0,  1, 0, 0,  0, 1, 0,  -1, 0, 0};
+        int[] corners = {0, 1, 2,  0, 2, 3};
+        float[] texCoords = {0, 0,  1, 0,  0, 1,  0, 0,  0.1f, 0,  0, 0.1f};
+
+        MeshProcessor processor = new MeshProcessor(positions, corners, false);
+        float[] normals = processor.computeNormals(MeshProcessor.Weighting.ANGLE, MeshProcessor.DEFAULT_CREASE_ANGLE);
+        float[] tangents = processor.computeTangents(normals, texCoords, MeshProcessor.DEFAULT_CREASE_ANGLE);
+
+        // Both faces count the same at the shared corner, whatever their UV density
+        float d = (float) (1.0 / Math.sqrt(2.0));
+        for (int c : new int[]{0, 3}) {
+            assertEquals(d, tangents[c * 4], DELTA);
+            assertEquals(d, tangents[c * 4 + 1], DELTA);
+            assertEquals(0.0f, tangents[c * 4 + 2], DELTA);
+            assertEquals(1.0f, tangents[c * 4 + 3], DELTA);
+        }
+    }
+
+    // The fork-join version must give exactly the sequential result on the bundled meshes
+    @Test
+    public void parallel_matchesSequentialOnBundledMeshes() throws IOException {
+        for (File mesh : BUNDLED_MESHES) {
+            assertTrue(mesh.getPath(), mesh.exists());
+            ObjData data = readObj(mesh);
+
+            float[] sequential = process(data, false);
+            float[] parallel = process(data, true);
+            assertArrayEquals(sequential, parallel, 0.0f);
+        }
+    }
+
+    // Timing of the sequential and fork-join versions; run by hand, not on every build
+    @Ignore("Benchmark")
+    @Test
+    public void benchmark_sequentialVsParallel() throws IOException {
+        for (File mesh : BUNDLED_MESHES) {
+            assertTrue(mesh.getPath(), mesh.exists());
+            ObjData data = readObj(mesh);
+
+            long sequentialNs = Long.MAX_VALUE;
+            long parallelNs = Long.MAX_VALUE;
+            for (int run = 0; run < 5; run++) {
+                long start = System.nanoTime();
+                process(data, false);
+                sequentialNs = Math.min(sequentialNs, System.nanoTime() - start);
+
+                start = System.nanoTime();
+                process(data, true);
+                parallelNs = Math.min(parallelNs, System.nanoTime() - start);
+            }
+
+            System.out.println(mesh.getName() + ": " + data.corners.length / 3 + " triangles, sequential "
+                    + sequentialNs / 1000000 + " ms, parallel " + parallelNs / 1000000 + " ms on "
+                    + Runtime.getRuntime().availableProcessors() + " cores");
+        }
+    }
+
+    // Normals followed by tangents, as ObjLoader computes them
+    private static float[] process(ObjData data, boolean parallel) {
+        MeshProcessor processor = new MeshProcessor(data.positions, data.corners, parallel);
+        float[] normals = processor.computeNormals(MeshProcessor.Weighting.ANGLE, MeshProcessor.DEFAULT_CREASE_ANGLE);
+        float[] tangents = processor.computeTangents(normals, data.texCoords, MeshProcessor.DEFAULT_CREASE_ANGLE);
+
+        float[] result = new float[normals.length + tangents.length];
+        System.arraycopy(normals, 0, result, 0, normals.length);
+        System.arraycopy(tangents, 0, result, normals.length, tangents.length);
+        return result;
+    }
+
+    // Positions, corner position indices and corner texture coordinates of an OBJ file
+    private static class ObjData {
+        float[] positions;
+        int[] corners;
+        float[] texCoords;
+    }
+
+    private static ObjData readObj(File file) throws IOException {
+        List<Float> positions = new ArrayList<>();
+        List<Float> uvs = new ArrayList<>();
+        List<Integer> corners = new ArrayList<>();
+        List<Float> texCoords = new ArrayList<>();
+
+        BufferedReader reader = new BufferedReader(new FileReader(file));
+        String line;
+        while ((line = reader.readLine()) != null) {
+            String[] parts = line.split("\\s+");
+            if (line.startsWith("v ")) {
+                positions.add(Float.parseFloat(parts[1]));
+                positions.add(Float.parseFloat(parts[2]));
+                positions.add(Float.parseFloat(parts[3]));
+            } else if (line.startsWith("vt ")) {
+                uvs.add(Float.parseFloat(parts[1]));
+                uvs.add(Float.parseFloat(parts[2]));
+            } else if (line.startsWith("f ")) {
+                // First triangle of the face, like ObjLoader
+                for (int i = 1; i <= 3; i++) {
+                    String[] faceParts = parts[i].split("/");
+                    corners.add(Integer.parseInt(faceParts[0]) - 1);
+                    if (faceParts.length > 1 && !faceParts[1].isEmpty()) {
+                        int texIdx = Integer.parseInt(faceParts[1]) - 1;
+                        texCoords.add(uvs.get(texIdx * 2));
+                        texCoords.add(uvs.get(texIdx * 2 + 1));
+                    } else {
+                        texCoords.add(0.0f);
+                        texCoords.add(0.0f);
+                    }
+                }
+            }
+        }
+        reader.close();
+
+        ObjData data = new ObjData();
+        data.positions = toFloatArray(positions);
+        data.corners = new int[corners.size()];
+        for (int i = 0; i < data.corners.length; i++) {
+            data.corners[i] = corners.get(i);
+        }
+        data.texCoords = toFloatArray(texCoords);
+        return data;
+    }
+
+    private static float[] toFloatArray(List<Float> list) {
+        float[] array = new float[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    private static void assertNormal(float[] normals, int corner, float x, float y, float z) {
+        assertEquals(x, normals[corner * 3], DELTA);
+        assertEquals(y, normals[corner * 3 + 1], DELTA);
+        assertEquals(z, normals[corner * 3 + 2], DELTA);
+    }
+}
@@ -0,0 +1,147 @@
+package edu.lasalle.oaxaca.modelado3d;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+/**
+ * Local unit tests for the batches published by {@link StreamingObjLoader}.
+ */
+public class StreamingObjLoaderTest {
+    private static final int STRIDE = StreamingObjLoader.FLOATS_PER_VERTEX;
+
+    @Test
+    public void batches_splitAtFaceLimit() throws Exception {
+        int faces = StreamingObjLoader.FACES_PER_BATCH + 1;
+        StreamingObjLoader loader = load(strip(faces, ""));
+
+        StreamingObjLoader.Batch first = loader.pollBatch();
+        assertEquals(0, first.firstVertex);
+        assertEquals(StreamingObjLoader.FACES_PER_BATCH * 3, first.vertexCount);
+        // Last corner of the last full face uses vertex FACES_PER_BATCH + 1 (0-based)
+        assertVertex(first, first.vertexCount - 1, StreamingObjLoader.FACES_PER_BATCH + 1);
+
+        StreamingObjLoader.Batch last = loader.pollBatch();
+        assertEquals(StreamingObjLoader.FACES_PER_BATCH * 3, last.firstVertex);
+        assertEquals(3, last.vertexCount);
+        assertVertex(last, 0, StreamingObjLoader.FACES_PER_BATCH);
+
+        assertNull(loader.pollBatch());
+    }
+
+    @Test
+    public void badVertexIndex_keepsFacesBeforeIt() throws Exception {
+        assertStopsAfter(10, "f 1//1 2//1 999//1\n");
+    }
+
+    @Test
+    public void badNormalIndex_keepsFacesBeforeIt() throws Exception {
+        assertStopsAfter(10, "f 1//1 2//7 3//1\n");
+    }
+
+    @Test
+    public void malformedNumber_keepsFacesBeforeIt() throws Exception {
+        assertStopsAfter(10, "f 1//1 x//1 3//1\n");
+    }
+
+    @Test
+    public void missingNormals_republishedSmooth() throws Exception {
+        // Two faces without normals folded by about 23 degrees along the edge 2-3
+        StreamingObjLoader loader = load("v 0 0 0\nv 1 0 0\nv 0 1 0\nv 1 1 0.3\n"
+                + "f 1 2 3\nf 2 4 3\n");
+
+        // First published with the flat face normal
+        StreamingObjLoader.Batch flat = loader.pollBatch();
+        assertEquals(0, flat.firstVertex);
+        assertEquals(6, flat.vertexCount);
+        assertNormal(flat, 1, 0, 0, 1);
+
+        // Then the same range again with smooth normals
+        StreamingObjLoader.Batch smooth = loader.pollBatch();
+        assertEquals(0, smooth.firstVertex);
+        assertEquals(6, smooth.vertexCount);
+        assertNull(loader.pollBatch());
+
+        // Vertex 1 is only in the first face and keeps its normal
+        assertNormal(smooth, 0, 0, 0, 1);
+        // Vertices 2 and 3 are shared: same unit normal in both faces, between the two
+        for (int[] shared : new int[][]{{1, 3}, {2, 5}}) {
+            float[] a = normal(smooth, shared[0]);
+            float[] b = normal(smooth, shared[1]);
+            assertArrayEquals(a, b, 1e-6f);
+            assertEquals(1.0f, (float) Math.sqrt(a[0] * a[0] + a[1] * a[1] + a[2] * a[2]), 1e-5f);
+            assertTrue(a[0] < 0 && a[2] < 1.0f);
+        }
+    }
+
+    @Test
+    public void missingNormals_republishOnlyBatchesThatNeedIt() throws Exception {
+        // A full batch with normals, then one face without
+        int faces = StreamingObjLoader.FACES_PER_BATCH;
+        StreamingObjLoader loader = load(strip(faces, "f 1 2 3\n"));
+
+        assertEquals(0, loader.pollBatch().firstVertex);
+        StreamingObjLoader.Batch last = loader.pollBatch();
+        assertEquals(faces * 3, last.firstVertex);
+        assertEquals(3, last.vertexCount);
+
+        StreamingObjLoader.Batch republished = loader.pollBatch();
+        assertEquals(faces * 3, republished.firstVertex);
+        assertEquals(3, republished.vertexCount);
+        assertNull(loader.pollBatch());
+    }
+
+    // A strip of faces, then the bad line and more faces that must not be read
+    private static void assertStopsAfter(int faces, String badLine) throws Exception {
+        StreamingObjLoader loader = load(strip(faces, badLine + "f 1//1 2//1 3//1\n"));
+
+        StreamingObjLoader.Batch batch = loader.pollBatch();
+        assertEquals(0, batch.firstVertex);
+        assertEquals(faces * 3, batch.vertexCount);
+        assertVertex(batch, 0, 0);
+        assertNull(loader.pollBatch());
+    }
+
+    // The context is only needed to open a resource in start()
+    private static StreamingObjLoader load(String obj) throws Exception {
+        StreamingObjLoader loader = new StreamingObjLoader(null, 0);
+        InputStream in = new ByteArrayInputStream(obj.getBytes(StandardCharsets.UTF_8));
+        loader.loadObj(in);
+        return loader;
+    }
+
+    // Faces (i, i + 1, i + 2) over vertices at (i, 2i, 3i), all with normal +z
+    private static String strip(int faces, String tail) {
+        StringBuilder obj = new StringBuilder();
+        for (int i = 0; i < faces + 2; i++) {
+            obj.append("v ").append(i).append(' ').append(2 * i).append(' ').append(3 * i).append('\n');
+        }
+        obj.append("vn 0 0 1\n");
+        for (int i = 1; i <= faces; i++) {
+            obj.append("f ").append(i).append("//1 ").append(i + 1).append("//1 ")
+                    .append(i + 2).append("//1\n");
+        }
+        return obj.append(tail).toString();
+    }
+
+    private static float[] normal(StreamingObjLoader.Batch batch, int vertex) {
+        int offset = vertex * STRIDE;
+        return new float[]{batch.data[offset + 3], batch.data[offset + 4], batch.data[offset + 5]};
+    }
+
+    private static void assertNormal(StreamingObjLoader.Batch batch, int vertex, float x, float y, float z) {
+        assertArrayEquals(new float[]{x, y, z}, normal(batch, vertex), 1e-6f);
+    }
+
+    private static void assertVertex(StreamingObjLoader.Batch batch, int vertex, int objVertex) {
+        int offset = vertex * STRIDE;
+        assertEquals(objVertex, batch.data[offset], 0.0f);
+        assertEquals(2 * objVertex, batch.data[offset + 1], 0.0f);
+        assertEquals(3 * objVertex, batch.data[offset + 2], 0.0f);
+        assertEquals(1.0f, batch.data[offset + 5], 0.0f);
+    }
+}